@@ -0,0 +1,396 @@
+package sdes.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * 批量暴力破解任务。
+ * <p>
+ * 输入文件由定长记录组成，每条记录6字节：4字节流编号（大端）、1字节明文、1字节密文。
+ * 同一个流的所有记录使用同一个密钥，因此一个流的候选密钥是其每条记录候选密钥的交集。
+ * <p>
+ * 对每个 (明文, 密文) 组合，能把明文加密为密文的密钥集合是固定的，
+ * 这里一次性预计算全部 65536 个组合的密钥位图（1024位，即16个long），
+ * 之后每条记录只需做16次按位与，不再调用任何加密运算。
+ * <p>
+ * 输入文件按块内存映射、多线程并行处理，按固定的时间间隔把进度写入检查点文件
+ * （检查点包含全部流的状态，按时间而不是按块写入，开销与块大小无关）；
+ * 任务中断后重新运行会从最近的检查点继续。
+ */
+public class BatchCracker {
+
+    /** 每条输入记录的字节数 */
+    public static final int RECORD_SIZE = 6;
+
+    /** 每个映射块最多包含的记录数 */
+    public static final int MAX_CHUNK_RECORDS = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private static final int KEY_SPACE = 1024; // 2^10
+    private static final int MASK_WORDS = KEY_SPACE / 64;
+    private static final int CHECKPOINT_MAGIC = 0x53444332; // "SDC2"
+    // 计算输入文件指纹时读取的头尾字节数
+    private static final int FINGERPRINT_BYTES = 64 * 1024;
+
+    private static volatile long[] keyMasks;
+
+    /** 默认的检查点间隔（毫秒） */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 10_000;
+
+    private final int threads;
+    private final int chunkRecords;
+    private final long checkpointIntervalMillis;
+
+    /**
+     * 使用默认参数：线程数等于CPU核数，每块一百万条记录，每10秒写一次检查点。
+     */
+    public BatchCracker() {
+        this(Runtime.getRuntime().availableProcessors(), 1 << 20);
+    }
+
+    /**
+     * 使用默认的检查点间隔。
+     */
+    public BatchCracker(int threads, int chunkRecords) {
+        this(threads, chunkRecords, DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param threads 并行处理的线程数
+     * @param chunkRecords 每个映射块包含的记录数，每轮并行处理 threads 个块；
+     *                     单个映射块不能超过2GB，因此最多为 {@link #MAX_CHUNK_RECORDS}
+     * @param checkpointIntervalMillis 两次写检查点之间至少间隔的毫秒数，中断后最多重做这么长时间的工作
+     */
+    public BatchCracker(int threads, int chunkRecords, long checkpointIntervalMillis) {
+        if (threads <= 0 || chunkRecords <= 0) {
+            throw new IllegalArgumentException("线程数和块大小必须为正数！");
+        }
+        if (checkpointIntervalMillis < 0) {
+            throw new IllegalArgumentException("检查点间隔不能为负数！");
+        }
+        if (chunkRecords > MAX_CHUNK_RECORDS) {
+            throw new IllegalArgumentException("块大小不能超过 " + MAX_CHUNK_RECORDS + " 条记录！");
+        }
+        this.threads = threads;
+        this.chunkRecords = chunkRecords;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    /**
+     * 执行破解任务。
+     * <p>
+     * 输出文件格式：4字节流个数，随后每个流依次为4字节流编号、8字节记录数、2字节候选密钥个数、
+     * 每个候选密钥2字节，按流编号升序排列。候选密钥个数为0说明该流的记录不可能来自同一个密钥。
+     *
+     * @param input 输入记录文件
+     * @param output 结果输出文件
+     * @param checkpoint 检查点文件，存在时从中恢复进度，任务完成后删除；
+     *                   检查点属于另一个输入文件（或输入文件已被修改）时抛出 IllegalStateException
+     * @return 本次运行的统计信息
+     */
+    public Report run(Path input, Path output, Path checkpoint) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long[] masks = keyMasks();
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % RECORD_SIZE != 0) {
+                throw new IllegalArgumentException("输入文件长度必须是" + RECORD_SIZE + "的倍数！");
+            }
+            long totalRecords = size / RECORD_SIZE;
+
+            long[] fingerprint = fingerprint(input, channel, size);
+            Map<Integer, long[]> streams = new HashMap<>();
+            long resumedFrom = readCheckpoint(checkpoint, fingerprint, streams);
+            long next = resumedFrom;
+            long lastCheckpoint = System.nanoTime();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                while (next < totalRecords) {
+                    // 一轮提交 threads 个块，全部完成后合并并写检查点
+                    List<Future<Map<Integer, long[]>>> futures = new ArrayList<>();
+                    for (int i = 0; i < threads && next < totalRecords; i++) {
+                        long first = next;
+                        int count = (int) Math.min(chunkRecords, totalRecords - first);
+                        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                                first * RECORD_SIZE, (long) count * RECORD_SIZE);
+                        futures.add(executor.submit(crackChunk(chunk, count, masks)));
+                        next = first + count;
+                    }
+                    for (Future<Map<Integer, long[]>> future : futures) {
+                        merge(streams, future.get());
+                    }
+                    if (next < totalRecords
+                            && System.nanoTime() - lastCheckpoint >= checkpointIntervalMillis * 1_000_000) {
+                        writeCheckpoint(checkpoint, fingerprint, next, streams);
+                        lastCheckpoint = System.nanoTime();
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("破解任务执行失败！", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            writeResult(output, streams);
+            Files.deleteIfExists(checkpoint);
+            return new Report(totalRecords - resumedFrom, resumedFrom, streams.size(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 处理一个映射块，返回块内各流的候选密钥位图。
+     */
+    private static Callable<Map<Integer, long[]>> crackChunk(MappedByteBuffer chunk, int count, long[] masks) {
+        return () -> {
+            Map<Integer, long[]> local = new HashMap<>();
+            int lastStream = 0;
+            long[] lastState = null;
+            for (int i = 0; i < count; i++) {
+                int streamId = chunk.getInt();
+                int pair = chunk.getShort() & 0xFFFF; // 高8位明文，低8位密文
+                // 同一个流的记录通常连续出现，缓存上一次的查找结果
+                if (lastState == null || streamId != lastStream) {
+                    lastStream = streamId;
+                    lastState = local.computeIfAbsent(streamId, id -> newState());
+                }
+                int base = pair * MASK_WORDS;
+                for (int w = 0; w < MASK_WORDS; w++) {
+                    lastState[w] &= masks[base + w];
+                }
+                lastState[MASK_WORDS]++;
+            }
+            return local;
+        };
+    }
+
+    /**
+     * 流状态：前16个long是候选密钥位图，最后一个long是记录数。
+     */
+    private static long[] newState() {
+        long[] state = new long[MASK_WORDS + 1];
+        Arrays.fill(state, 0, MASK_WORDS, -1L);
+        return state;
+    }
+
+    private static void merge(Map<Integer, long[]> into, Map<Integer, long[]> from) {
+        for (Map.Entry<Integer, long[]> entry : from.entrySet()) {
+            long[] state = into.get(entry.getKey());
+            if (state == null) {
+                into.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            long[] other = entry.getValue();
+            for (int w = 0; w < MASK_WORDS; w++) {
+                state[w] &= other[w];
+            }
+            state[MASK_WORDS] += other[MASK_WORDS];
+        }
+    }
+
+    /**
+     * 预计算 (明文, 密文) → 候选密钥位图，全局只计算一次。
+     */
+    private static long[] keyMasks() {
+        long[] masks = keyMasks;
+        if (masks == null) {
+            synchronized (BatchCracker.class) {
+                masks = keyMasks;
+                if (masks == null) {
+                    masks = new long[256 * 256 * MASK_WORDS];
+                    for (int key = 0; key < KEY_SPACE; key++) {
+                        byte[] table = new SdesAlgorithm(SdesAlgorithm.keyFromIndex(key)).encryptTable();
+                        for (int p = 0; p < 256; p++) {
+                            int pair = (p << 8) | (table[p] & 0xFF);
+                            masks[pair * MASK_WORDS + (key >>> 6)] |= 1L << (key & 63);
+                        }
+                    }
+                    keyMasks = masks;
+                }
+            }
+        }
+        return masks;
+    }
+
+    // --- 检查点与结果文件 ---
+
+    /**
+     * 输入文件指纹：文件长度、最后修改时间、头尾各 FINGERPRINT_BYTES 字节的 CRC32。
+     */
+    private static long[] fingerprint(Path input, FileChannel channel, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, FINGERPRINT_BYTES));
+        readFully(channel, buffer, 0);
+        crc.update(buffer);
+        buffer.clear();
+        readFully(channel, buffer, size - buffer.capacity());
+        crc.update(buffer);
+        return new long[]{size, Files.getLastModifiedTime(input).toMillis(), crc.getValue()};
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("读取输入文件时意外到达文件末尾！");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * 读取检查点，返回已完成的记录数；检查点不存在时返回0。
+     */
+    private static long readCheckpoint(Path checkpoint, long[] fingerprint, Map<Integer, long[]> streams) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IllegalStateException("无法识别的检查点文件：" + checkpoint);
+            }
+            for (long expected : fingerprint) {
+                if (in.readLong() != expected) {
+                    throw new IllegalStateException("检查点文件 " + checkpoint
+                            + " 与输入文件不匹配（输入文件不同或已被修改），请删除该检查点后重新运行！");
+                }
+            }
+            long done = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int streamId = in.readInt();
+                long[] state = new long[MASK_WORDS + 1];
+                for (int w = 0; w <= MASK_WORDS; w++) {
+                    state[w] = in.readLong();
+                }
+                streams.put(streamId, state);
+            }
+            return done;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，保证任何时刻中断检查点都是完整的。
+     */
+    private static void writeCheckpoint(Path checkpoint, long[] fingerprint, long done, Map<Integer, long[]> streams) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            for (long word : fingerprint) {
+                out.writeLong(word);
+            }
+            out.writeLong(done);
+            out.writeInt(streams.size());
+            for (Map.Entry<Integer, long[]> entry : streams.entrySet()) {
+                out.writeInt(entry.getKey());
+                for (long word : entry.getValue()) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeResult(Path output, Map<Integer, long[]> streams) throws IOException {
+        Integer[] ids = streams.keySet().toArray(new Integer[0]);
+        Arrays.sort(ids);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            out.writeInt(ids.length);
+            for (Integer id : ids) {
+                long[] state = streams.get(id);
+                int keyCount = 0;
+                for (int w = 0; w < MASK_WORDS; w++) {
+                    keyCount += Long.bitCount(state[w]);
+                }
+                out.writeInt(id);
+                out.writeLong(state[MASK_WORDS]);
+                out.writeShort(keyCount);
+                for (int key = 0; key < KEY_SPACE; key++) {
+                    if ((state[key >>> 6] & (1L << (key & 63))) != 0) {
+                        out.writeShort(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 一次运行的统计信息。
+     */
+    public static class Report {
+        private final long records;
+        private final long resumedFrom;
+        private final int streams;
+        private final long elapsedNanos;
+
+        Report(long records, long resumedFrom, int streams, long elapsedNanos) {
+            this.records = records;
+            this.resumedFrom = resumedFrom;
+            this.streams = streams;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** 本次运行处理的记录数（不含从检查点恢复的部分） */
+        public long getRecords() {
+            return records;
+        }
+
+        /** 从检查点恢复时已完成的记录数 */
+        public long getResumedFrom() {
+            return resumedFrom;
+        }
+
+        public int getStreams() {
+            return streams;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double recordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("处理记录: %d (从第 %d 条恢复), 流: %d, 耗时: %d ms, 吞吐量: %.0f 条/秒",
+                    records, resumedFrom, streams, elapsedNanos / 1_000_000, recordsPerSecond());
+        }
+    }
+
+    /**
+     * 命令行入口：java sdes.core.BatchCracker 输入文件 输出文件 [检查点文件]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("用法: java sdes.core.BatchCracker <输入文件> <输出文件> [检查点文件]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Path checkpoint = args.length > 2 ? Paths.get(args[2]) : Paths.get(args[1] + ".ckpt");
+        System.out.println(new BatchCracker().run(input, output, checkpoint));
+    }
+}
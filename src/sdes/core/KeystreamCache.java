@@ -0,0 +1,310 @@
+package sdes.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CTR / OFB 工作模式的密钥流缓存。
+ * <p>
+ * S-DES 的分组只有8位，两种模式的密钥流都是周期性的：
+ * <ul>
+ *     <li>CTR：第 i 个字节为 E((IV + i) mod 256)，周期恰为256；</li>
+ *     <li>OFB：s<sub>0</sub> = IV，s<sub>i+1</sub> = E(s<sub>i</sub>)，由于 E 是256个值上的置换，
+ *     序列从 IV 出发一定会回到 IV，周期等于 IV 所在置换环的长度（不超过256）。</li>
+ * </ul>
+ * 因此对同一个 (模式, 密钥, IV) 只需预计算一个完整周期，之后的加解密都只是与缓存的密钥流做异或，
+ * 不再调用加密运算。两种模式下加密与解密是同一个操作。
+ * <p>
+ * 密钥流存放在构造时按内存预算一次性分配的堆外内存中，该内存被划分为 {@link #SLOT_SIZE} 字节的槽位，
+ * 每条密钥流占一个槽位（CTR 的一个周期正好占满，较短的 OFB 周期重复铺满槽位能容纳的整数个周期）。
+ * <p>
+ * 命中时不加锁：查找使用 ConcurrentHashMap，淘汰使用 CLOCK 近似 LRU（命中只设置访问标记）。
+ * 读取槽位期间持有该条目的引用计数，被淘汰的条目要等最后一个读者结束后才释放槽位，
+ * 所以槽位不会在读取过程中被覆盖。只有生成新密钥流和淘汰时才需要加锁。
+ */
+public class KeystreamCache {
+
+    public enum Mode {
+        CTR, OFB
+    }
+
+    /** 每条密钥流占用的字节数，即一个完整的 CTR 周期 */
+    public static final int SLOT_SIZE = 256;
+
+    private final ByteBuffer slab;
+    private final ConcurrentHashMap<Long, Keystream> entries = new ConcurrentHashMap<>();
+
+    // 以下字段只在持有对象锁时访问
+    private final Keystream[] owners;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int clockHand;
+
+    /**
+     * @param budgetBytes 缓存的密钥流最多占用的堆外内存字节数，至少为 {@link #SLOT_SIZE}，
+     *                    按 SLOT_SIZE 向下取整后在构造时一次性分配
+     */
+    public KeystreamCache(long budgetBytes) {
+        if (budgetBytes < SLOT_SIZE) {
+            throw new IllegalArgumentException("内存预算至少为 " + SLOT_SIZE + " 字节！");
+        }
+        if (budgetBytes / SLOT_SIZE > Integer.MAX_VALUE / SLOT_SIZE) {
+            throw new IllegalArgumentException("内存预算不能超过 " + (Integer.MAX_VALUE / SLOT_SIZE * SLOT_SIZE) + " 字节！");
+        }
+        int slots = (int) (budgetBytes / SLOT_SIZE);
+        this.slab = ByteBuffer.allocateDirect(slots * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        this.owners = new Keystream[slots];
+        this.freeSlots = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            freeSlots[i] = slots - 1 - i;
+        }
+        this.freeCount = slots;
+    }
+
+    /**
+     * 加密或解密一段数据，返回新数组。
+     * @param mode 工作模式
+     * @param key 10位密钥
+     * @param iv 8位初始向量（CTR 模式下为初始计数器），取值 0~255
+     * @param data 从密钥流起点开始的数据
+     */
+    public byte[] crypt(Mode mode, boolean[] key, int iv, byte[] data) {
+        byte[] result = data.clone();
+        apply(mode, key, iv, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * 原地加密或解密 data[off, off+len)。
+     * @param position 这段数据在整个流中的字节偏移，用于定位密钥流
+     */
+    public void apply(Mode mode, boolean[] key, int iv, long position, byte[] data, int off, int len) {
+        Objects.checkFromIndexSize(off, len, data.length);
+        if (position < 0) {
+            throw new IllegalArgumentException("流偏移不能为负数！");
+        }
+        if (iv < 0 || iv > 255) {
+            throw new IllegalArgumentException("初始向量取值必须在0~255之间！");
+        }
+        int keyIndex = SdesAlgorithm.keyToIndex(key);
+        long id = ((long) mode.ordinal() << 18) | ((long) keyIndex << 8) | iv;
+
+        Keystream keystream = entries.get(id);
+        if (keystream != null && keystream.pin()) {
+            // 已有标记时不再写，避免热点条目的缓存行在线程间来回失效
+            if (!keystream.referenced) {
+                keystream.referenced = true;
+            }
+        } else {
+            keystream = load(id, mode, keyIndex, iv);
+        }
+        try {
+            xor(keystream, position, data, off, len);
+        } finally {
+            unpin(keystream);
+        }
+    }
+
+    /**
+     * 当前缓存的密钥流个数。
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 当前已被占用的槽位字节数（包括已淘汰、但仍有读者在使用的槽位）。
+     */
+    public synchronized long memoryUsed() {
+        return (long) (owners.length - freeCount) * SLOT_SIZE;
+    }
+
+    // --- 内部实现 ---
+
+    /**
+     * 生成密钥流并放入缓存，返回已持有引用计数的条目。
+     * 所有槽位都被正在读取的条目占用时，返回一个不进缓存的堆内临时密钥流。
+     */
+    private Keystream load(long id, Mode mode, int keyIndex, int iv) {
+        byte[] cycle = generateCycle(mode, keyIndex, iv);
+        int period = cycle.length;
+        int repeats = SLOT_SIZE / period;
+
+        synchronized (this) {
+            // 其他线程可能已经生成了同一个密钥流
+            Keystream existing = entries.get(id);
+            if (existing != null && existing.pin()) {
+                return existing;
+            }
+            int slot = allocateSlot();
+            ByteBuffer target = slot >= 0 ? slab : ByteBuffer.allocate(SLOT_SIZE).order(ByteOrder.nativeOrder());
+            int offset = slot >= 0 ? slot * SLOT_SIZE : 0;
+            ByteBuffer view = target.duplicate();
+            view.position(offset);
+            for (int r = 0; r < repeats; r++) {
+                view.put(cycle, 0, period);
+            }
+            Keystream keystream = new Keystream(id, target, slot, offset, period * repeats, period);
+            keystream.pin();
+            if (slot >= 0) {
+                owners[slot] = keystream;
+                entries.put(id, keystream);
+            }
+            return keystream;
+        }
+    }
+
+    /**
+     * 取一个空闲槽位，没有时按 CLOCK 算法淘汰：跳过并清除带访问标记的条目，淘汰第一个没有标记的。
+     * 被淘汰的条目如果仍有读者，其槽位要等读者结束后才空出，这时继续淘汰下一个。
+     * 调用时须持有对象锁。
+     * @return 槽位编号，所有槽位都在被读取时返回 -1
+     */
+    private int allocateSlot() {
+        for (int step = 0; freeCount == 0 && step < 2 * owners.length; step++) {
+            Keystream candidate = owners[clockHand];
+            clockHand = (clockHand + 1) % owners.length;
+            if (candidate == null || candidate.isEvicted()) {
+                continue;
+            }
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                continue;
+            }
+            entries.remove(candidate.id, candidate);
+            if (candidate.evict()) {
+                reclaim(candidate);
+            }
+        }
+        return freeCount > 0 ? freeSlots[--freeCount] : -1;
+    }
+
+    private void unpin(Keystream keystream) {
+        if (keystream.unpin()) {
+            synchronized (this) {
+                reclaim(keystream);
+            }
+        }
+    }
+
+    /**
+     * 归还已淘汰且没有读者的条目的槽位。调用时须持有对象锁。
+     */
+    private void reclaim(Keystream keystream) {
+        owners[keystream.slot] = null;
+        freeSlots[freeCount++] = keystream.slot;
+    }
+
+    private static void xor(Keystream keystream, long position, byte[] data, int off, int len) {
+        ByteBuffer source = keystream.buffer;
+        int base = keystream.offset;
+        int tileLength = keystream.tileLength;
+        int ks = (int) (position % keystream.period);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+        int pos = off;
+        int end = off + len;
+        while (pos < end) {
+            int run = Math.min(end - pos, tileLength - ks);
+            int runEnd = pos + run;
+            // 按8字节异或，使用绝对位置读写，多个线程可以共享同一块堆外内存
+            for (; pos + 8 <= runEnd; pos += 8, ks += 8) {
+                buffer.putLong(pos, buffer.getLong(pos) ^ source.getLong(base + ks));
+            }
+            // 铺满后不足8字节的尾部逐字节处理
+            for (; pos < runEnd; pos++, ks++) {
+                data[pos] ^= source.get(base + ks);
+            }
+            if (ks == tileLength) {
+                ks = 0;
+            }
+        }
+    }
+
+    /**
+     * 计算密钥流的一个完整周期。
+     */
+    private static byte[] generateCycle(Mode mode, int keyIndex, int iv) {
+        byte[] table = new SdesAlgorithm(SdesAlgorithm.keyFromIndex(keyIndex)).encryptTable();
+        byte[] cycle = new byte[256];
+        int period;
+        if (mode == Mode.CTR) {
+            for (int i = 0; i < 256; i++) {
+                cycle[i] = table[(iv + i) & 0xFF];
+            }
+            period = 256;
+        } else {
+            int state = iv;
+            period = 0;
+            do {
+                state = table[state] & 0xFF;
+                cycle[period++] = (byte) state;
+            } while (state != iv);
+        }
+        return period == 256 ? cycle : Arrays.copyOf(cycle, period);
+    }
+
+    /**
+     * 缓存的一条密钥流：buffer 中从 offset 开始的 tileLength 字节为若干个完整周期首尾相接。
+     * <p>
+     * state 的低位是正在读取的线程数，EVICTED 位表示已被淘汰，RECLAIMED 位表示槽位已归还。
+     * 读者先加计数再检查 EVICTED，淘汰者先置 EVICTED 再检查计数，两者至少有一方能看到对方，
+     * 因此槽位只会在没有读者时被归还，且只归还一次。
+     */
+    private static class Keystream {
+        private static final int EVICTED = 1 << 29;
+        private static final int RECLAIMED = 1 << 30;
+
+        final long id;
+        final ByteBuffer buffer;
+        final int slot;
+        final int offset;
+        final int tileLength;
+        final int period;
+        // CLOCK 访问标记
+        volatile boolean referenced;
+        private final AtomicInteger state = new AtomicInteger();
+
+        Keystream(long id, ByteBuffer buffer, int slot, int offset, int tileLength, int period) {
+            this.id = id;
+            this.buffer = buffer;
+            this.slot = slot;
+            this.offset = offset;
+            this.tileLength = tileLength;
+            this.period = period;
+        }
+
+        /**
+         * 登记一个读者；条目已被淘汰时返回 false。
+         */
+        boolean pin() {
+            if ((state.incrementAndGet() & EVICTED) != 0) {
+                state.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 注销一个读者；返回 true 表示调用方应归还槽位。
+         */
+        boolean unpin() {
+            return state.decrementAndGet() == EVICTED && state.compareAndSet(EVICTED, EVICTED | RECLAIMED);
+        }
+
+        /**
+         * 标记为已淘汰；返回 true 表示当前没有读者，调用方应立即归还槽位。
+         */
+        boolean evict() {
+            return state.addAndGet(EVICTED) == EVICTED && state.compareAndSet(EVICTED, EVICTED | RECLAIMED);
+        }
+
+        boolean isEvicted() {
+            return (state.get() & EVICTED) != 0;
+        }
+    }
+}
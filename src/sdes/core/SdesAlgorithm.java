@@ -78,6 +78,71 @@ public class SdesAlgorithm {
         return permute(temp, IP_INV);
     }
 
+    /**
+     * 加密一个字节（8位分组的整数形式）。
+     * @param plainByte 取值 0~255 的明文分组。
+     * @return 取值 0~255 的密文分组。
+     */
+    public int encryptByte(int plainByte) {
+        return toDecimal(encrypt(toBinaryArray(plainByte & 0xFF, 8)));
+    }
+
+    /**
+     * 解密一个字节（8位分组的整数形式）。
+     * @param cipherByte 取值 0~255 的密文分组。
+     * @return 取值 0~255 的明文分组。
+     */
+    public int decryptByte(int cipherByte) {
+        return toDecimal(decrypt(toBinaryArray(cipherByte & 0xFF, 8)));
+    }
+
+    /**
+     * 生成完整的加密查找表，table[p] 即明文字节 p 对应的密文字节。
+     * 分组只有8位，256项的表即可替代后续所有的逐位运算。
+     */
+    public byte[] encryptTable() {
+        byte[] table = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = (byte) encryptByte(i);
+        }
+        return table;
+    }
+
+    /**
+     * 生成完整的解密查找表，table[c] 即密文字节 c 对应的明文字节。
+     */
+    public byte[] decryptTable() {
+        byte[] table = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = (byte) decryptByte(i);
+        }
+        return table;
+    }
+
+    /**
+     * 把 0~1023 的整数转换为10位密钥（高位在前）。
+     * @param keyIndex 密钥的整数形式。
+     * @return 10位密钥的布尔数组。
+     */
+    public static boolean[] keyFromIndex(int keyIndex) {
+        if (keyIndex < 0 || keyIndex >= 1024) {
+            throw new IllegalArgumentException("密钥取值必须在0~1023之间！");
+        }
+        return toBinaryArray(keyIndex, 10);
+    }
+
+    /**
+     * 把10位密钥转换为 0~1023 的整数（高位在前）。
+     * @param key 10位密钥的布尔数组。
+     * @return 密钥的整数形式。
+     */
+    public static int keyToIndex(boolean[] key) {
+        if (key.length != 10) {
+            throw new IllegalArgumentException("密钥长度必须为10位！");
+        }
+        return toDecimal(key);
+    }
+
     // --- 内部核心算法步骤 ---
 
     /**
@@ -206,7 +271,7 @@ public class SdesAlgorithm {
         return result;
     }
 
-    private int toDecimal(boolean[] bits) {
+    private static int toDecimal(boolean[] bits) {
         int decimal = 0;
         for (int i = 0; i < bits.length; i++) {
             if (bits[i]) {
@@ -216,7 +281,7 @@ public class SdesAlgorithm {
         return decimal;
     }
 
-    private boolean[] toBinaryArray(int number, int length) {
+    private static boolean[] toBinaryArray(int number, int length) {
         boolean[] binary = new boolean[length];
         for (int i = length - 1; i >= 0; i--) {
             binary[i] = (number & 1) == 1;
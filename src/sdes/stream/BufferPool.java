@@ -0,0 +1,66 @@
+package sdes.stream;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 直接缓冲区池。
+ * 池中缓冲区的数量和容量在构造时固定，整条流水线占用的内存因此有上界。
+ * 取用不会阻塞：流水线按需求量控制在途缓冲区个数，保证池足够大时总能取到。
+ */
+public class BufferPool {
+
+    private final BlockingQueue<ByteBuffer> free;
+    private final int bufferSize;
+
+    /**
+     * @param bufferCount 缓冲区个数
+     * @param bufferSize 每个缓冲区的字节数
+     */
+    public BufferPool(int bufferCount, int bufferSize) {
+        if (bufferCount <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("缓冲区个数和容量必须为正数！");
+        }
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * 取出一个已清空的缓冲区。
+     * @return 池为空时返回 null
+     */
+    public ByteBuffer tryAcquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还一个由本池分配的缓冲区。
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            throw new IllegalArgumentException("只能归还由本池分配的缓冲区！");
+        }
+        if (!free.offer(buffer)) {
+            throw new IllegalStateException("缓冲区被重复归还！");
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 当前空闲的缓冲区个数。
+     */
+    public int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,262 @@
+package sdes.stream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流水线中的一个处理阶段。
+ * <p>
+ * 所有信号（onNext、request、onComplete 等）只把事件记下来并调度一次 drain，
+ * 真正的处理在 Executor 上串行执行，任何回调都不会阻塞线程，因此对线程池的类型和大小没有要求；
+ * 不同阶段的 drain 是不同的任务，在多线程的 Executor 上可以并行运行。
+ * <p>
+ * 需求量控制：
+ * <ul>
+ *     <li>向上游最多保持 batchSize 个未消费的请求，每消费掉一半再补足，输入队列因此不超过 batchSize；</li>
+ *     <li>处理结果写满一个缓冲区后放入待发送队列，只有下游请求过才发送；
+ *     待发送队列非空时不处理新的输入，由于一个输入最多产生 {@link #MAX_OUTPUTS_PER_INPUT} 个输出，
+ *     待发送队列也是有界的。</li>
+ * </ul>
+ * 每个阶段因此最多同时占用 batchSize + MAX_OUTPUTS_PER_INPUT + 1 个缓冲区。
+ * <p>
+ * 出错时不取消订阅，而是把异常记录到整条流水线共享的 failure 中，
+ * 此后各阶段只消费并归还缓冲区，不再处理数据，结束信号照常向下游传递，
+ * 因此结果完成时所有缓冲区都已归还缓冲池。
+ */
+public abstract class ByteStage implements Flow.Processor<ByteBuffer, ByteBuffer> {
+
+    /** 一个输入缓冲区最多转换出的满缓冲区个数（编码阶段为8倍膨胀） */
+    static final int MAX_OUTPUTS_PER_INPUT = 8;
+
+    private final BufferPool pool;
+    private final Executor executor;
+    private final int batchSize;
+    private final int replenishAt;
+    private final AtomicReference<Throwable> failure;
+
+    private final Queue<ByteBuffer> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean upstreamDone;
+
+    // 以下字段只在 drain 中访问，drain 由 wip 保证串行
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super ByteBuffer> downstream;
+    private ByteBuffer out;
+    private int consumed;
+    private boolean finished;
+    private boolean terminated;
+
+    /**
+     * @param failure 整条流水线共享的异常记录
+     */
+    protected ByteStage(BufferPool pool, Executor executor, int batchSize, AtomicReference<Throwable> failure) {
+        this.pool = pool;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.replenishAt = Math.max(1, batchSize / 2);
+        this.failure = failure;
+    }
+
+    /**
+     * 把 in 中的数据尽可能多地转换到 out 中。
+     * 当 out 无法再容纳下一个输出单元时应直接返回，由调用方换一个新缓冲区继续。
+     */
+    protected abstract void transform(ByteBuffer in, ByteBuffer out);
+
+    /**
+     * 上游结束时调用，子类可在此检查残留状态，出错时抛出异常。
+     */
+    protected void finish() {
+    }
+
+    // --- Flow.Publisher ---
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("每个阶段只支持一个订阅者！"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    failure.compareAndSet(null, new IllegalArgumentException("请求数量必须为正数！"));
+                } else {
+                    demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                }
+                signal();
+            }
+
+            @Override
+            public void cancel() {
+                failure.compareAndSet(null, new CancellationException("下游取消了订阅！"));
+                signal();
+            }
+        });
+    }
+
+    // --- Flow.Subscriber ---
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.upstream = subscription;
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(ByteBuffer in) {
+        inbox.offer(in);
+        signal();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        failure.compareAndSet(null, throwable);
+        upstreamDone = true;
+        signal();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        signal();
+    }
+
+    // --- 串行处理 ---
+
+    private void signal() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drainLoop);
+        }
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        do {
+            drain();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() {
+        if (terminated) {
+            // 结束后不应再收到数据，收到也只归还
+            releaseAll(inbox);
+            return;
+        }
+        deliver();
+        ByteBuffer in;
+        while (pending.isEmpty() && (in = inbox.poll()) != null) {
+            try {
+                if (failure.get() == null) {
+                    process(in);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                pool.release(in);
+            }
+            if (++consumed >= replenishAt) {
+                upstream.request(consumed);
+                consumed = 0;
+            }
+            deliver();
+        }
+        if (upstreamDone && inbox.isEmpty()) {
+            if (!finished) {
+                finished = true;
+                try {
+                    if (failure.get() == null) {
+                        finish();
+                        if (out != null && out.position() > 0) {
+                            emit();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+                deliver();
+            }
+            if (pending.isEmpty()) {
+                releaseOut();
+                terminated = true;
+                downstream.onComplete();
+            }
+        }
+    }
+
+    private void process(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            if (out == null) {
+                out = pool.tryAcquire();
+                if (out == null) {
+                    throw new IllegalStateException("缓冲池已耗尽！");
+                }
+            }
+            transform(in, out);
+            if (in.hasRemaining()) {
+                // 输出缓冲区已满
+                emit();
+            }
+        }
+        // 未写满的输出缓冲区留到下一个输入或上游结束时再下发
+        if (out != null && !out.hasRemaining()) {
+            emit();
+        }
+    }
+
+    private void emit() {
+        ByteBuffer full = out;
+        out = null;
+        full.flip();
+        pending.add(full);
+    }
+
+    /**
+     * 在下游需求允许的范围内发送待发送队列；出错后直接归还。
+     */
+    private void deliver() {
+        if (failure.get() != null) {
+            releaseAll(pending);
+            releaseOut();
+            return;
+        }
+        while (!pending.isEmpty() && demand.get() > 0) {
+            demand.decrementAndGet();
+            downstream.onNext(pending.poll());
+        }
+    }
+
+    private void releaseAll(Queue<ByteBuffer> queue) {
+        ByteBuffer buffer;
+        while ((buffer = queue.poll()) != null) {
+            pool.release(buffer);
+        }
+    }
+
+    private void releaseOut() {
+        if (out != null) {
+            pool.release(out);
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package sdes.stream;
+
+import sdes.core.SdesAlgorithm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基于 java.util.concurrent.Flow 的 S-DES 流式处理流水线。
+ * <p>
+ * 用法示例（解码 → 解密 → 用新密钥重新加密 → 编码）：
+ * <pre>
+ * new SdesPipeline(pool, executor, 16)
+ *         .decode()
+ *         .decrypt(oldKey)
+ *         .encrypt(newKey)
+ *         .encode()
+ *         .run(in, out);
+ * </pre>
+ * 编解码阶段使用与 {@link sdes.utils.BitUtils#toBinaryString} 相同的“0/1”文本格式，
+ * 加解密阶段按字节处理，与 ASCII 模式下逐字符加密的结果一致。
+ */
+public class SdesPipeline {
+
+    private final BufferPool pool;
+    private final Executor executor;
+    private final int batchSize;
+    private final List<ByteStage> stages = new ArrayList<>();
+    // 任一阶段、数据源或输出端出错时记录的第一个异常
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private boolean started;
+
+    /**
+     * @param pool 所有阶段共用的缓冲池，缓冲区容量必须是8的正整数倍
+     * @param executor 各阶段运行所用的线程池。阶段的处理从不阻塞等待其他阶段，任意大小的线程池都可以，
+     *                 线程越多各阶段越能并行；只有输出端写出数据时会阻塞在 I/O 上
+     * @param batchSize 每个阶段最多向上游请求的缓冲区个数
+     */
+    public SdesPipeline(BufferPool pool, Executor executor, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("批大小必须为正数！");
+        }
+        if (pool.getBufferSize() % 8 != 0) {
+            // 编码阶段每个输入字节对应8个输出字节，容量是8的倍数时一个输入最多产生8个输出缓冲区
+            throw new IllegalArgumentException("缓冲区容量必须是8的倍数！");
+        }
+        this.pool = pool;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 添加解码阶段：“0/1”文本 → 字节，空白字符会被忽略。
+     */
+    public SdesPipeline decode() {
+        stages.add(new DecodeStage(pool, executor, batchSize, failure));
+        return this;
+    }
+
+    /**
+     * 添加编码阶段：字节 → “0/1”文本。
+     */
+    public SdesPipeline encode() {
+        stages.add(new EncodeStage(pool, executor, batchSize, failure));
+        return this;
+    }
+
+    /**
+     * 添加加密阶段。
+     * @param key 10位密钥
+     */
+    public SdesPipeline encrypt(boolean[] key) {
+        stages.add(new TableStage(pool, executor, batchSize, failure, new SdesAlgorithm(key).encryptTable()));
+        return this;
+    }
+
+    /**
+     * 添加解密阶段。
+     * @param key 10位密钥
+     */
+    public SdesPipeline decrypt(boolean[] key) {
+        stages.add(new TableStage(pool, executor, batchSize, failure, new SdesAlgorithm(key).decryptTable()));
+        return this;
+    }
+
+    /**
+     * 从 in 读取数据，经过所有阶段处理后写入 out。
+     * 读取在调用线程上进行，只在第一个阶段请求数据时才读取；任一环节出错后停止读取。
+     * 每个流水线只能运行一次。
+     * @return 写入 out 的总字节数，出错时以异常完成；完成时所有缓冲区都已归还缓冲池
+     */
+    public CompletableFuture<Long> run(ReadableByteChannel in, WritableByteChannel out) {
+        if (started) {
+            throw new IllegalStateException("流水线只能运行一次！");
+        }
+        started = true;
+        checkPoolSize();
+
+        ChannelSource source = new ChannelSource();
+        ChannelSink sink = new ChannelSink(pool, executor, out, batchSize, failure);
+        Flow.Publisher<ByteBuffer> upstream = source;
+        for (ByteStage stage : stages) {
+            upstream.subscribe(stage);
+            upstream = stage;
+        }
+        upstream.subscribe(sink);
+        source.pump(in);
+        return sink.result;
+    }
+
+    private static IOException asIOException(Exception e) {
+        return e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+
+    /**
+     * 按需求量控制，在途缓冲区个数有确定的上界：每个阶段最多 batchSize + MAX_OUTPUTS_PER_INPUT + 1 个，
+     * 输出端最多 batchSize 个，数据源正在读取的1个。缓冲池不小于这个数时取用缓冲区永远不会失败。
+     */
+    private void checkPoolSize() {
+        int required = stages.size() * (batchSize + ByteStage.MAX_OUTPUTS_PER_INPUT + 1) + batchSize + 1;
+        if (pool.available() < required) {
+            throw new IllegalStateException("缓冲池太小，当前流水线至少需要 " + required + " 个缓冲区！");
+        }
+    }
+
+    /**
+     * 流水线起点：在调用线程上读取输入，每收到一个请求才读一个缓冲区。
+     */
+    private class ChannelSource implements Flow.Publisher<ByteBuffer>, Flow.Subscription {
+        private final Semaphore permits = new Semaphore(0);
+        private Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            permits.release((int) Math.min(n, batchSize));
+        }
+
+        @Override
+        public void cancel() {
+            failure.compareAndSet(null, new CancellationException("下游取消了订阅！"));
+            permits.release();
+        }
+
+        void pump(ReadableByteChannel in) {
+            while (true) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, e);
+                    break;
+                }
+                if (failure.get() != null) {
+                    break;
+                }
+                ByteBuffer buffer = pool.tryAcquire();
+                if (buffer == null) {
+                    failure.compareAndSet(null, new IllegalStateException("缓冲池已耗尽！"));
+                    break;
+                }
+                int n;
+                try {
+                    n = in.read(buffer);
+                } catch (IOException | RuntimeException e) {
+                    failure.compareAndSet(null, new UncheckedIOException("读取输入失败！", asIOException(e)));
+                    n = -1;
+                }
+                if (n < 0) {
+                    pool.release(buffer);
+                    break;
+                }
+                if (n == 0) {
+                    // 没有读到数据，归还许可后重试
+                    pool.release(buffer);
+                    permits.release();
+                    continue;
+                }
+                buffer.flip();
+                subscriber.onNext(buffer);
+            }
+            subscriber.onComplete();
+        }
+    }
+
+    // --- 各处理阶段 ---
+
+    /**
+     * 查表完成的加密/解密阶段。
+     */
+    private static class TableStage extends ByteStage {
+        private final byte[] table;
+
+        TableStage(BufferPool pool, Executor executor, int batchSize, AtomicReference<Throwable> failure, byte[] table) {
+            super(pool, executor, batchSize, failure);
+            this.table = table;
+        }
+
+        @Override
+        protected void transform(ByteBuffer in, ByteBuffer out) {
+            while (in.hasRemaining() && out.hasRemaining()) {
+                out.put(table[in.get() & 0xFF]);
+            }
+        }
+    }
+
+    private static class DecodeStage extends ByteStage {
+        // 跨缓冲区边界时尚未凑满8位的部分
+        private int bits;
+        private int bitCount;
+
+        DecodeStage(BufferPool pool, Executor executor, int batchSize, AtomicReference<Throwable> failure) {
+            super(pool, executor, batchSize, failure);
+        }
+
+        @Override
+        protected void transform(ByteBuffer in, ByteBuffer out) {
+            while (in.hasRemaining() && out.hasRemaining()) {
+                byte c = in.get();
+                if (c == '0' || c == '1') {
+                    bits = (bits << 1) | (c - '0');
+                    if (++bitCount == 8) {
+                        out.put((byte) bits);
+                        bits = 0;
+                        bitCount = 0;
+                    }
+                } else if (!Character.isWhitespace(c)) {
+                    throw new IllegalArgumentException("输入的不是有效的二进制字符串！");
+                }
+            }
+        }
+
+        @Override
+        protected void finish() {
+            if (bitCount != 0) {
+                throw new IllegalArgumentException("二进制字符串长度必须是8的倍数。");
+            }
+        }
+    }
+
+    private static class EncodeStage extends ByteStage {
+        EncodeStage(BufferPool pool, Executor executor, int batchSize, AtomicReference<Throwable> failure) {
+            super(pool, executor, batchSize, failure);
+        }
+
+        @Override
+        protected void transform(ByteBuffer in, ByteBuffer out) {
+            while (in.hasRemaining() && out.remaining() >= 8) {
+                int b = in.get() & 0xFF;
+                for (int i = 7; i >= 0; i--) {
+                    out.put((byte) ((b >>> i) & 1 | '0'));
+                }
+            }
+        }
+    }
+
+    /**
+     * 流水线末端：写出数据并把缓冲区归还给缓冲池。
+     * 写出在 Executor 上串行执行；出错后不取消订阅，而是继续接收并归还缓冲区，直到上游结束。
+     */
+    private static class ChannelSink implements Flow.Subscriber<ByteBuffer> {
+        private final BufferPool pool;
+        private final Executor executor;
+        private final WritableByteChannel channel;
+        private final int replenishAt;
+        private final int batchSize;
+        private final AtomicReference<Throwable> failure;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        private final Queue<ByteBuffer> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean upstreamDone;
+
+        private Flow.Subscription subscription;
+        private long written;
+        private int consumed;
+
+        ChannelSink(BufferPool pool, Executor executor, WritableByteChannel channel, int batchSize,
+                    AtomicReference<Throwable> failure) {
+            this.pool = pool;
+            this.executor = executor;
+            this.channel = channel;
+            this.batchSize = batchSize;
+            this.replenishAt = Math.max(1, batchSize / 2);
+            this.failure = failure;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            inbox.offer(buffer);
+            signal();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure.compareAndSet(null, throwable);
+            upstreamDone = true;
+            signal();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            signal();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drainLoop);
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            ByteBuffer buffer;
+            while ((buffer = inbox.poll()) != null) {
+                try {
+                    if (failure.get() == null) {
+                        while (buffer.hasRemaining()) {
+                            written += channel.write(buffer);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failure.compareAndSet(null, new UncheckedIOException("写出结果失败！", asIOException(e)));
+                } finally {
+                    pool.release(buffer);
+                }
+                if (++consumed >= replenishAt) {
+                    subscription.request(consumed);
+                    consumed = 0;
+                }
+            }
+            if (upstreamDone && inbox.isEmpty() && !result.isDone()) {
+                Throwable throwable = failure.get();
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(written);
+                }
+            }
+        }
+    }
+}
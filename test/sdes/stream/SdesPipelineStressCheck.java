@@ -0,0 +1,177 @@
+package sdes.stream;
+
+import sdes.core.SdesAlgorithm;
+import sdes.utils.BitUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 流水线压力检查：在不同线程池、批大小、缓冲区容量下反复运行，
+ * 检查输出正确、不死锁，并且结束后所有缓冲区都已归还缓冲池。
+ * <p>
+ * 运行方式（在项目根目录）：
+ * <pre>
+ * javac -encoding UTF-8 -d out src/sdes/Main.java src/sdes/core/*.java src/sdes/gui/*.java src/sdes/utils/*.java \
+ *         src/sdes/stream/*.java test/sdes/stream/*.java
+ * java -cp out sdes.stream.SdesPipelineStressCheck
+ * </pre>
+ * 全部通过时退出码为0，否则打印失败原因并以1退出。
+ */
+public class SdesPipelineStressCheck {
+
+    private static final boolean[] OLD_KEY = BitUtils.fromBinaryString("1010000010");
+    private static final boolean[] NEW_KEY = BitUtils.fromBinaryString("0111111101");
+    private static final int ROUNDS = 30;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        byte[] plain = new byte[3000];
+        new Random(1).nextBytes(plain);
+        String input = encode(plain, new SdesAlgorithm(OLD_KEY), true);
+        String expected = encode(plain, new SdesAlgorithm(NEW_KEY), false);
+
+        ExecutorService[] executors = {
+                new ForkJoinPool(1), new ForkJoinPool(2), Executors.newSingleThreadExecutor(), Executors.newFixedThreadPool(4)
+        };
+        String[] names = {"ForkJoinPool(1)", "ForkJoinPool(2)", "SingleThread", "FixedThreadPool(4)"};
+        for (int e = 0; e < executors.length; e++) {
+            for (int batchSize : new int[]{1, 2, 16}) {
+                for (int bufferSize : new int[]{8, 64}) {
+                    for (int scale : new int[]{1, 10}) {
+                        String label = names[e] + " batch=" + batchSize + " buffer=" + bufferSize + " pool×" + scale;
+                        checkReencrypt(label, executors[e], batchSize, bufferSize, scale, input, expected);
+                    }
+                }
+            }
+            checkFailures(names[e], executors[e], input);
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+
+        if (failures > 0) {
+            System.out.println("失败: " + failures);
+            System.exit(1);
+        }
+        System.out.println("全部通过");
+    }
+
+    private static void checkReencrypt(String label, ExecutorService executor, int batchSize, int bufferSize,
+                                       int scale, String input, String expected) throws Exception {
+        int minimum = 4 * (batchSize + ByteStage.MAX_OUTPUTS_PER_INPUT + 1) + batchSize + 1;
+        BufferPool pool = new BufferPool(minimum * scale, bufferSize);
+        for (int round = 0; round < ROUNDS; round++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                new SdesPipeline(pool, executor, batchSize)
+                        .decode().decrypt(OLD_KEY).encrypt(NEW_KEY).encode()
+                        .run(channel(input), Channels.newChannel(out))
+                        .get(30, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                fail(label, "第 " + round + " 轮超时（疑似死锁）");
+                return;
+            }
+            if (!new String(out.toByteArray(), StandardCharsets.US_ASCII).equals(expected)) {
+                fail(label, "第 " + round + " 轮输出不正确");
+                return;
+            }
+            if (pool.available() != minimum * scale) {
+                fail(label, "第 " + round + " 轮后缓冲区未全部归还: " + pool.available());
+                return;
+            }
+        }
+    }
+
+    private static void checkFailures(String label, ExecutorService executor, String input) throws Exception {
+        BufferPool pool = new BufferPool(200, 8);
+
+        // 写出中途失败
+        WritableByteChannel broken = new WritableByteChannel() {
+            private int writes;
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (++writes > 50) {
+                    throw new IOException("写出失败");
+                }
+                int n = src.remaining();
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        expectFailure(label + " 写出失败", pool, new SdesPipeline(pool, executor, 2)
+                .decode().decrypt(OLD_KEY).encrypt(NEW_KEY).encode().run(channel(input), broken));
+
+        // 非法输入
+        String invalid = input.substring(0, 4000) + "x" + input.substring(4000);
+        expectFailure(label + " 非法输入", pool, new SdesPipeline(pool, executor, 2)
+                .decode().decrypt(OLD_KEY).encode().run(channel(invalid), Channels.newChannel(new ByteArrayOutputStream())));
+
+        // 长度不是8的倍数
+        expectFailure(label + " 长度不足", pool, new SdesPipeline(pool, executor, 2)
+                .decode().run(channel("0101"), Channels.newChannel(new ByteArrayOutputStream())));
+    }
+
+    private static void expectFailure(String label, BufferPool pool, CompletableFuture<Long> result)
+            throws InterruptedException {
+        try {
+            result.get(30, TimeUnit.SECONDS);
+            fail(label, "应当失败却成功完成");
+        } catch (ExecutionException expected) {
+            if (pool.available() != 200) {
+                fail(label, "失败后缓冲区未全部归还: " + pool.available());
+            }
+        } catch (TimeoutException e) {
+            fail(label, "超时（疑似死锁）");
+        }
+    }
+
+    private static void fail(String label, String message) {
+        failures++;
+        System.out.println("[失败] " + label + ": " + message);
+    }
+
+    private static ReadableByteChannel channel(String text) {
+        return Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * 逐字节加密后编码为“0/1”文本，lineBreaks 为 true 时每10个分组换一行。
+     */
+    private static String encode(byte[] plain, SdesAlgorithm sdes, boolean lineBreaks) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < plain.length; i++) {
+            String bits = Integer.toBinaryString(sdes.encryptByte(plain[i] & 0xFF) | 0x100).substring(1);
+            sb.append(bits);
+            if (lineBreaks && i % 10 == 9) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}